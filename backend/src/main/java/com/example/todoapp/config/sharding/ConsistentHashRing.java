@@ -0,0 +1,57 @@
+package com.example.todoapp.config.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Maps user ids to shard indexes. Each shard owns {@code virtualNodes} points on the ring,
+ * so adding a shard only moves roughly 1/N of the users instead of reshuffling everyone.
+ */
+public class ConsistentHashRing {
+
+    private final SortedMap<Long, Integer> ring = new TreeMap<>();
+    private final int shardCount;
+
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        this.shardCount = shardCount;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+    }
+
+    public int shardFor(Long userId) {
+        long hash = hash("user-" + userId);
+        SortedMap<Long, Integer> tail = ring.tailMap(hash);
+        // Wrap around to the start of the ring when the hash lands past the last point
+        return tail.isEmpty() ? ring.get(ring.firstKey()) : tail.get(tail.firstKey());
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    // First 8 bytes of MD5: stable across JVMs and restarts and evenly spread
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (digest[i] & 0xFF);
+            }
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
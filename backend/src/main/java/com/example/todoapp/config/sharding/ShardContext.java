@@ -0,0 +1,26 @@
+package com.example.todoapp.config.sharding;
+
+/**
+ * Holds the id of the user whose todos the current thread is working on.
+ * {@link ShardRoutingDataSource} reads it when a connection is requested; when nothing
+ * is bound the directory shard is used.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Long> CURRENT_USER_ID = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static void setUserId(Long userId) {
+        CURRENT_USER_ID.set(userId);
+    }
+
+    public static Long getUserId() {
+        return CURRENT_USER_ID.get();
+    }
+
+    public static void clear() {
+        CURRENT_USER_ID.remove();
+    }
+}
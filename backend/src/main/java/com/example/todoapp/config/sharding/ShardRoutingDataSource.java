@@ -0,0 +1,31 @@
+package com.example.todoapp.config.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Picks the todo shard for the user bound in {@link ShardContext}, falling back to the
+ * directory shard (the default target) when no user is bound.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String DIRECTORY_KEY = "directory";
+
+    private final ConsistentHashRing ring;
+
+    public ShardRoutingDataSource(ConsistentHashRing ring) {
+        this.ring = ring;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Long userId = ShardContext.getUserId();
+        if (userId == null) {
+            return DIRECTORY_KEY;
+        }
+        return ring.shardFor(userId);
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.todoapp.config.sharding;
+
+import com.example.todoapp.service.sharding.ShardRebalancer;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sharded persistence mode, enabled with {@code todoapp.sharding.enabled=true}.
+ * Replaces the single auto-configured datasource with a {@link ShardRoutingDataSource}
+ * over one directory pool (users) and N shard pools (todos).
+ *
+ * A shard is identified by its position in {@code todoapp.sharding.shards}: its ring points
+ * and id range derive from that index. The list may only grow by appending; removing or
+ * reordering entries would reassign users and leave the rows of a dropped shard behind.
+ *
+ * Todo queries must not join users, which only exists in the directory. Deleting a user through
+ * JPA cascades to the directory's todos table only; the user's rows on their shard have to be
+ * deleted separately.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+@ConditionalOnProperty(prefix = "todoapp.sharding", name = "enabled", havingValue = "true")
+public class ShardingConfig implements DisposableBean {
+
+    // Todo ids are allocated from a disjoint range per shard so rows keep their id when rebalanced
+    static final long ID_RANGE_PER_SHARD = 1_000_000_000_000L;
+
+    // Not beans themselves, and the routing datasource does not close its targets, so track them here
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    public ShardRoutingDataSource dataSource(ShardingProperties properties) {
+        if (properties.getShards().isEmpty()) {
+            throw new IllegalStateException("todoapp.sharding.shards must list at least one shard");
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(properties.getShards().size(), properties.getVirtualNodes());
+        DataSource directory = createPool("todo-directory", properties.getDirectory());
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(ShardRoutingDataSource.DIRECTORY_KEY, directory);
+        for (int i = 0; i < properties.getShards().size(); i++) {
+            DataSource shard = createPool("todo-shard-" + i, properties.getShards().get(i));
+            initShardSchema(shard, i);
+            targets.put(i, shard);
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(ring);
+        routing.setTargetDataSources(targets);
+        routing.setDefaultTargetDataSource(directory);
+        routing.setLenientFallback(false);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    // Reads and writes follow the new ring as soon as the context is up, so moving rows while
+    // serving traffic would show moved users an empty list. Only run without a web server
+    // (the 'rebalance' profile) and exit once the rows are moved.
+    @Bean
+    @ConditionalOnProperty(prefix = "todoapp.sharding", name = "rebalance-on-startup", havingValue = "true")
+    public ApplicationRunner shardRebalanceRunner(ShardRebalancer shardRebalancer, ApplicationContext context) {
+        return args -> {
+            if (context instanceof WebServerApplicationContext) {
+                throw new IllegalStateException("Shard rebalancing must run without a web server; "
+                        + "start with the 'sharded,rebalance' profiles while the application is stopped");
+            }
+            shardRebalancer.rebalance();
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach(HikariDataSource::close);
+        pools.clear();
+    }
+
+    // Each pool gets its own name and MBean so per-shard active/idle/pending counts show up in JMX
+    private HikariDataSource createPool(String poolName, ShardingProperties.Shard shard) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(poolName);
+        pool.setJdbcUrl(shard.getUrl());
+        pool.setUsername(shard.getUsername());
+        pool.setPassword(shard.getPassword());
+        pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+        pool.setRegisterMbeans(true);
+        pools.add(pool);
+        return pool;
+    }
+
+    // Hibernate only manages the schema of the default (directory) target, so shards are created here
+    private void initShardSchema(DataSource shard, int index) {
+        DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("db/shard-schema.sql")), shard);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+        long rangeStart = index * ID_RANGE_PER_SHARD + 1;
+        // Rows moved in from other shards keep their own ids, so only look inside this shard's range
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM todos WHERE id BETWEEN ? AND ?",
+                Long.class, rangeStart, rangeStart + ID_RANGE_PER_SHARD - 1);
+        long start = Math.max(maxId + 1, rangeStart);
+        jdbcTemplate.execute("ALTER TABLE todos ALTER COLUMN id RESTART WITH " + start);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.todoapp.config.sharding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "todoapp.sharding")
+public class ShardingProperties {
+
+    private boolean enabled = false;
+
+    // Points each shard gets on the hash ring; more points give a smoother spread of users
+    private int virtualNodes = 128;
+
+    // Copy todos to the shard the ring now assigns them to, then shut the application down.
+    // Needs a context without a web server, see the 'rebalance' profile
+    private boolean rebalanceOnStartup = false;
+
+    // Holds the users table (and anything not routed by user id)
+    private Shard directory = new Shard();
+
+    // Holds the todos table, partitioned by owning user id. Append only: the index is the shard's identity
+    private List<Shard> shards = new ArrayList<>();
+
+    public static class Shard {
+        private String url;
+        private String username = "sa";
+        private String password = "";
+        private int maximumPoolSize = 10;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public int getMaximumPoolSize() {
+            return maximumPoolSize;
+        }
+
+        public void setMaximumPoolSize(int maximumPoolSize) {
+            this.maximumPoolSize = maximumPoolSize;
+        }
+    }
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    public boolean isRebalanceOnStartup() {
+        return rebalanceOnStartup;
+    }
+
+    public void setRebalanceOnStartup(boolean rebalanceOnStartup) {
+        this.rebalanceOnStartup = rebalanceOnStartup;
+    }
+
+    public Shard getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Shard directory) {
+        this.directory = directory;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public void setShards(List<Shard> shards) {
+        this.shards = shards;
+    }
+}
@@ -1,23 +1,43 @@
 package com.example.todoapp.controller;
 
 import com.example.todoapp.model.dto.TodoDto;
+import com.example.todoapp.model.entity.UserEntity;
 import com.example.todoapp.service.TodoService;
+import com.example.todoapp.service.idempotency.IdempotencyKeyInUseException;
+import com.example.todoapp.service.idempotency.IdempotencyKeyMismatchException;
+import com.example.todoapp.service.idempotency.IdempotencyService;
+import com.example.todoapp.service.idempotency.InvalidIdempotencyKeyException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/todos")
 public class TodoController {
 
     private final TodoService todoService;
+    private final IdempotencyService idempotencyService;
 
     @Autowired
-    public TodoController(TodoService todoService) {
+    public TodoController(TodoService todoService, IdempotencyService idempotencyService) {
         this.todoService = todoService;
+        this.idempotencyService = idempotencyService;
+    }
+
+    // Mutating endpoints accept an optional Idempotency-Key header; a retry with the same key
+    // gets the stored response back instead of running the change again.
+    private <T> ResponseEntity<T> idempotent(String idempotencyKey, UserEntity currentUser, HttpServletRequest request,
+                                             Object requestBody, Class<T> bodyType, Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        String fingerprint = idempotencyService.fingerprint(request.getMethod(), request.getRequestURI(), requestBody);
+        return idempotencyService.execute(currentUser.getId(), idempotencyKey, fingerprint, bodyType, action);
     }
 
     @GetMapping
@@ -33,21 +53,28 @@ public class TodoController {
     }
 
     @PostMapping
-    public ResponseEntity<TodoDto> createTodo(@RequestBody TodoDto todoDto) {
+    public ResponseEntity<TodoDto> createTodo(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                              @RequestBody TodoDto todoDto, HttpServletRequest request) {
          try {
-            TodoDto createdTodo = todoService.createTodoForCurrentUser(todoDto);
-            return ResponseEntity.status(HttpStatus.CREATED).body(createdTodo);
+            UserEntity currentUser = todoService.getCurrentUser();
+            return idempotent(idempotencyKey, currentUser, request, todoDto, TodoDto.class, () -> {
+                TodoDto createdTodo = todoService.createTodoForUser(currentUser, todoDto);
+                return ResponseEntity.status(HttpStatus.CREATED).body(createdTodo);
+            });
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         }
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<TodoDto> updateTodo(@PathVariable Long id, @RequestBody TodoDto todoDto) {
+    public ResponseEntity<TodoDto> updateTodo(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                              @PathVariable Long id, @RequestBody TodoDto todoDto, HttpServletRequest request) {
         try {
-            return todoService.updateTodoForCurrentUser(id, todoDto)
-                    .map(ResponseEntity::ok)
-                    .orElse(ResponseEntity.notFound().build());
+            UserEntity currentUser = todoService.getCurrentUser();
+            return idempotent(idempotencyKey, currentUser, request, todoDto, TodoDto.class,
+                    () -> todoService.updateTodoForUser(currentUser, id, todoDto)
+                            .map(ResponseEntity::ok)
+                            .orElse(ResponseEntity.notFound().build()));
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         } catch (SecurityException e) {
@@ -56,17 +83,37 @@ public class TodoController {
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteTodo(@PathVariable Long id) {
+    public ResponseEntity<Void> deleteTodo(@RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                           @PathVariable Long id, HttpServletRequest request) {
          try {
-            if (todoService.deleteTodoForCurrentUser(id)) {
-                return ResponseEntity.noContent().build();
-            } else {
-                return ResponseEntity.notFound().build();
-            }
+            UserEntity currentUser = todoService.getCurrentUser();
+            return idempotent(idempotencyKey, currentUser, request, null, Void.class, () -> {
+                if (todoService.deleteTodoForUser(currentUser, id)) {
+                    return ResponseEntity.noContent().<Void>build();
+                } else {
+                    return ResponseEntity.notFound().<Void>build();
+                }
+            });
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
     }
+
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<Void> handleInvalidIdempotencyKey() {
+        return ResponseEntity.badRequest().build();
+    }
+
+    // Another node is still running the original request
+    @ExceptionHandler(IdempotencyKeyInUseException.class)
+    public ResponseEntity<Void> handleIdempotencyKeyInUse() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    public ResponseEntity<Void> handleIdempotencyKeyMismatch() {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).build();
+    }
 }
@@ -23,6 +23,9 @@ public class UserEntity {
     @Column(nullable = false)
     private String provider; // e.g., "google", "facebook", "microsoft"
 
+    @Column(length = 64)
+    private String profileHash; // SHA-256 of the provider profile last written, to skip no-op logins
+
     // One user can have many todos
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     private Set<TodoEntity> todos;
@@ -79,6 +82,14 @@ public class UserEntity {
         this.provider = provider;
     }
 
+    public String getProfileHash() {
+        return profileHash;
+    }
+
+    public void setProfileHash(String profileHash) {
+        this.profileHash = profileHash;
+    }
+
     public Set<TodoEntity> getTodos() {
         return todos;
     }
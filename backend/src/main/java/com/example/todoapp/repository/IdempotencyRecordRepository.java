@@ -0,0 +1,46 @@
+package com.example.todoapp.repository;
+
+import com.example.todoapp.model.entity.IdempotencyRecordEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecordEntity, Long> {
+    Optional<IdempotencyRecordEntity> findByUserIdAndIdempotencyKey(Long userId, String idempotencyKey);
+
+    // Takes over a pending record whose lease started before the cutoff. Returns 0 if it was
+    // completed or taken over by someone else in the meantime.
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecordEntity r SET r.claimedAt = :now "
+            + "WHERE r.id = :id AND r.statusCode IS NULL AND r.claimedAt < :cutoff")
+    int takeOverExpiredClaim(@Param("id") Long id, @Param("cutoff") Instant cutoff, @Param("now") Instant now);
+
+    // Stores the response, but only while the caller still holds the lease it ran under; returns 0
+    // if another node took the record over in the meantime
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecordEntity r SET r.statusCode = :statusCode, r.responseBody = :responseBody "
+            + "WHERE r.id = :id AND r.claimedAt = :claimedAt AND r.statusCode IS NULL")
+    int complete(@Param("id") Long id, @Param("claimedAt") Instant claimedAt,
+                 @Param("statusCode") Integer statusCode, @Param("responseBody") String responseBody);
+
+    // Gives up a pending record, again only while the caller still holds its lease
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecordEntity r "
+            + "WHERE r.id = :id AND r.claimedAt = :claimedAt AND r.statusCode IS NULL")
+    int release(@Param("id") Long id, @Param("claimedAt") Instant claimedAt);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecordEntity r WHERE r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
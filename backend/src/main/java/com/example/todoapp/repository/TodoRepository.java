@@ -2,11 +2,16 @@ package com.example.todoapp.repository;
 
 import com.example.todoapp.model.entity.TodoEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
 public interface TodoRepository extends JpaRepository<TodoEntity, Long> {
-    List<TodoEntity> findByUserId(Long userId);
+    // Filters on the user_id column directly. A derived findByUserId joins users, which does not
+    // exist on a todo shard.
+    @Query("SELECT t FROM TodoEntity t WHERE t.user.id = :userId")
+    List<TodoEntity> findByUserId(@Param("userId") Long userId);
 }
@@ -2,7 +2,11 @@ package com.example.todoapp.repository;
 
 import com.example.todoapp.model.entity.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 
@@ -10,4 +14,23 @@ import java.util.Optional;
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
     Optional<UserEntity> findByExternalIdAndProvider(String externalId, String provider);
     Optional<UserEntity> findByEmail(String email); // Might be useful
+
+    // Inserts a new user or updates an existing one, in a single statement. The row is only
+    // written when the stored profile hash differs, so repeated logins with an unchanged profile
+    // return 0 without taking a row lock. Email is kept if the provider did not send one.
+    @Modifying
+    @Transactional
+    @Query(value = """
+            MERGE INTO users u
+            USING (VALUES (1)) AS s(one)
+            ON u.external_id = :externalId AND u.provider = :provider
+            WHEN MATCHED AND (u.profile_hash IS NULL OR u.profile_hash <> :profileHash) THEN
+                UPDATE SET name = :name, email = COALESCE(:email, u.email), profile_hash = :profileHash
+            WHEN NOT MATCHED THEN
+                INSERT (external_id, provider, name, email, profile_hash)
+                VALUES (:externalId, :provider, :name, :email, :profileHash)
+            """, nativeQuery = true)
+    int upsertProfile(@Param("externalId") String externalId, @Param("provider") String provider,
+                      @Param("name") String name, @Param("email") String email,
+                      @Param("profileHash") String profileHash);
 }
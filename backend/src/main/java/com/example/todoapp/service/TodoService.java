@@ -1,5 +1,6 @@
 package com.example.todoapp.service;
 
+import com.example.todoapp.config.sharding.ShardContext;
 import com.example.todoapp.model.dto.TodoDto;
 import com.example.todoapp.model.entity.TodoEntity;
 import com.example.todoapp.model.entity.UserEntity;
@@ -10,10 +11,12 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -21,15 +24,20 @@ public class TodoService {
 
     private final TodoRepository todoRepository;
     private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
 
     @Autowired
-    public TodoService(TodoRepository todoRepository, UserRepository userRepository) {
+    public TodoService(TodoRepository todoRepository, UserRepository userRepository, PlatformTransactionManager transactionManager) {
         this.todoRepository = todoRepository;
         this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
     }
 
     // Helper method to get current authenticated user (will be refined)
-    private UserEntity getCurrentUser() {
+    public UserEntity getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null || !authentication.isAuthenticated() || !(authentication.getPrincipal() instanceof OAuth2User)) {
             // This case should ideally be handled by security config redirecting to login
@@ -63,27 +71,42 @@ public class TodoService {
                 .orElseThrow(() -> new IllegalStateException("User not found in database. Authentication principal: " + externalId + ", Provider: " + finalProvider + ". OAuth2User attributes: " + oauth2User.getAttributes()));
     }
 
+    // The user is resolved first, outside the todo transaction, so that lookup always hits the
+    // directory shard. The user id is then bound as the routing key and the todo work runs in
+    // its own transaction on that user's shard. Without sharding the key is simply ignored.
+    private <T> T onUserShard(UserEntity user, TransactionTemplate template, Supplier<T> work) {
+        ShardContext.setUserId(user.getId());
+        try {
+            return template.execute(status -> work.get());
+        } finally {
+            ShardContext.clear();
+        }
+    }
 
-    @Transactional(readOnly = true)
     public List<TodoDto> getTodosForCurrentUser() {
         UserEntity currentUser = getCurrentUser();
-        return todoRepository.findByUserId(currentUser.getId()).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return onUserShard(currentUser, readOnlyTransactionTemplate, () ->
+                todoRepository.findByUserId(currentUser.getId()).stream()
+                        .map(this::convertToDto)
+                        .collect(Collectors.toList()));
     }
 
-    @Transactional
-    public TodoDto createTodoForCurrentUser(TodoDto todoDto) {
-        UserEntity currentUser = getCurrentUser();
-        TodoEntity todoEntity = new TodoEntity(todoDto.getTitle(), todoDto.getDescription(), currentUser);
-        todoEntity.setCompleted(todoDto.isCompleted());
-        todoEntity = todoRepository.save(todoEntity);
-        return convertToDto(todoEntity);
+    // The mutating methods take the user resolved by the caller, which also needs it to scope
+    // idempotency keys, so the users table is only queried once per request.
+    public TodoDto createTodoForUser(UserEntity currentUser, TodoDto todoDto) {
+        return onUserShard(currentUser, transactionTemplate, () -> {
+            TodoEntity todoEntity = new TodoEntity(todoDto.getTitle(), todoDto.getDescription(), currentUser);
+            todoEntity.setCompleted(todoDto.isCompleted());
+            todoEntity = todoRepository.save(todoEntity);
+            return convertToDto(todoEntity);
+        });
     }
 
-    @Transactional
-    public Optional<TodoDto> updateTodoForCurrentUser(Long todoId, TodoDto todoDto) {
-        UserEntity currentUser = getCurrentUser();
+    public Optional<TodoDto> updateTodoForUser(UserEntity currentUser, Long todoId, TodoDto todoDto) {
+        return onUserShard(currentUser, transactionTemplate, () -> updateTodo(currentUser, todoId, todoDto));
+    }
+
+    private Optional<TodoDto> updateTodo(UserEntity currentUser, Long todoId, TodoDto todoDto) {
         Optional<TodoEntity> existingTodoOpt = todoRepository.findById(todoId);
 
         if (existingTodoOpt.isPresent()) {
@@ -101,9 +124,11 @@ public class TodoService {
         return Optional.empty(); // Todo not found
     }
 
-    @Transactional
-    public boolean deleteTodoForCurrentUser(Long todoId) {
-        UserEntity currentUser = getCurrentUser();
+    public boolean deleteTodoForUser(UserEntity currentUser, Long todoId) {
+        return onUserShard(currentUser, transactionTemplate, () -> deleteTodo(currentUser, todoId));
+    }
+
+    private boolean deleteTodo(UserEntity currentUser, Long todoId) {
         Optional<TodoEntity> todoOpt = todoRepository.findById(todoId);
 
         if (todoOpt.isPresent()) {
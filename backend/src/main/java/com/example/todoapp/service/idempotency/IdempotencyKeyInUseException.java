@@ -0,0 +1,11 @@
+package com.example.todoapp.service.idempotency;
+
+/**
+ * Thrown when another node is still running the original request for an idempotency key.
+ */
+public class IdempotencyKeyInUseException extends RuntimeException {
+
+    public IdempotencyKeyInUseException(String idempotencyKey) {
+        super("Request with Idempotency-Key " + idempotencyKey + " is still being processed");
+    }
+}
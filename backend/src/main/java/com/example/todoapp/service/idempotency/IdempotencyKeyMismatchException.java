@@ -0,0 +1,11 @@
+package com.example.todoapp.service.idempotency;
+
+/**
+ * Thrown when an idempotency key is reused for a request with a different method, path or body.
+ */
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    public IdempotencyKeyMismatchException(String idempotencyKey) {
+        super("Idempotency-Key " + idempotencyKey + " was already used for a different request");
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.todoapp.service.idempotency;
+
+import com.example.todoapp.model.entity.IdempotencyRecordEntity;
+import com.example.todoapp.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runs a mutating request at most once per (user id, Idempotency-Key) and replays the stored
+ * response for retries, without calling the action again.
+ *
+ * Completed responses are kept in a bounded in-memory map and in the idempotency_keys table, so
+ * a retry that lands on another node is still answered from the stored result. Duplicates that
+ * arrive while the original is running wait for it on the same node; on another node the
+ * pending database row makes them fail with {@link IdempotencyKeyInUseException} until the
+ * row's lease ({@code todoapp.idempotency.pending-timeout}) runs out and a retry may take over.
+ * The timeout must be longer than the slowest request: a request still running when its lease
+ * is taken over has its action run twice. Results are only stored under the lease they ran
+ * with, so the superseded execution cannot overwrite the new owner's record.
+ *
+ * Each record keeps a fingerprint of the original request, and a key reused for a different
+ * request fails with {@link IdempotencyKeyMismatchException}.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration pendingTimeout;
+
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, StoredResponse> completed;
+
+    private record StoredResponse(int statusCode, String body, String requestFingerprint, Instant createdAt) {
+    }
+
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository repository, ObjectMapper objectMapper,
+                              @Value("${todoapp.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${todoapp.idempotency.pending-timeout:30s}") Duration pendingTimeout,
+                              @Value("${todoapp.idempotency.max-entries:10000}") int maxEntries) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.pendingTimeout = pendingTimeout;
+        // Least recently used entries are dropped once the map is full; the database still has them
+        this.completed = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Fingerprint of a request, compared on replay so a key cannot be reused for another request.
+     */
+    public String fingerprint(String method, String path, Object requestBody) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String request = method + " " + path + "\n" + (requestBody != null ? serialize(requestBody) : "");
+            return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public <T> ResponseEntity<T> execute(Long userId, String idempotencyKey, String requestFingerprint,
+                                         Class<T> bodyType, Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String cacheKey = userId + ":" + idempotencyKey;
+
+        while (true) {
+            StoredResponse cached = completed.get(cacheKey);
+            if (cached != null && !isExpired(cached.createdAt())) {
+                return replay(cached, idempotencyKey, requestFingerprint, bodyType);
+            }
+
+            CompletableFuture<StoredResponse> execution = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(cacheKey, execution);
+            if (running != null) {
+                StoredResponse stored;
+                try {
+                    stored = running.join();
+                } catch (CompletionException e) {
+                    continue; // The original failed and stored nothing, so this retry may run it
+                }
+                return replay(stored, idempotencyKey, requestFingerprint, bodyType);
+            }
+
+            try {
+                IdempotencyRecordEntity record = repository.findByUserIdAndIdempotencyKey(userId, idempotencyKey)
+                        .orElse(null);
+                if (record != null && isExpired(record.getCreatedAt())) {
+                    repository.delete(record);
+                    record = null;
+                }
+
+                if (record != null && record.isCompleted()) {
+                    // Answered earlier, possibly by another node
+                    StoredResponse stored = new StoredResponse(record.getStatusCode(), record.getResponseBody(),
+                            record.getRequestFingerprint(), record.getCreatedAt());
+                    completed.put(cacheKey, stored);
+                    execution.complete(stored);
+                    return replay(stored, idempotencyKey, requestFingerprint, bodyType);
+                }
+
+                if (record != null) {
+                    checkFingerprint(record.getRequestFingerprint(), idempotencyKey, requestFingerprint);
+                    takeOver(record, idempotencyKey);
+                } else {
+                    record = claim(userId, idempotencyKey, requestFingerprint);
+                }
+
+                StoredResponse stored = runAndStore(record, action);
+                completed.put(cacheKey, stored);
+                execution.complete(stored);
+                // The first execution answers from the stored copy too, so it matches every later replay
+                return toResponse(stored, bodyType);
+            } catch (RuntimeException e) {
+                execution.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(cacheKey, execution);
+            }
+        }
+    }
+
+    // Claim the key first so a duplicate on another node sees the pending row instead of racing
+    private IdempotencyRecordEntity claim(Long userId, String idempotencyKey, String requestFingerprint) {
+        try {
+            return repository.save(new IdempotencyRecordEntity(userId, idempotencyKey, requestFingerprint, now()));
+        } catch (DataIntegrityViolationException e) {
+            throw new IdempotencyKeyInUseException(idempotencyKey);
+        }
+    }
+
+    // A pending row whose lease ran out was left behind by a node that crashed or timed out
+    private void takeOver(IdempotencyRecordEntity record, String idempotencyKey) {
+        Instant now = now();
+        Instant cutoff = now.minus(pendingTimeout);
+        if (!record.getClaimedAt().isBefore(cutoff)
+                || repository.takeOverExpiredClaim(record.getId(), cutoff, now) == 0) {
+            throw new IdempotencyKeyInUseException(idempotencyKey);
+        }
+        record.setClaimedAt(now);
+    }
+
+    private <T> StoredResponse runAndStore(IdempotencyRecordEntity record, Supplier<ResponseEntity<T>> action) {
+        ResponseEntity<T> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            release(record); // Nothing was stored, so a retry should run the request again
+            throw e;
+        }
+
+        StoredResponse stored = new StoredResponse(response.getStatusCode().value(), serialize(response.getBody()),
+                record.getRequestFingerprint(), record.getCreatedAt());
+        // The change has been applied, so the claim must never be released from here on: a retry
+        // elsewhere would apply it again. If the result cannot be stored, the pending row keeps
+        // blocking other nodes until its lease runs out, and this node still replays from memory.
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            try {
+                if (repository.complete(record.getId(), record.getClaimedAt(), stored.statusCode(), stored.body()) == 0) {
+                    log.warn("Idempotency key {} was taken over while its request was running; result not stored",
+                            record.getIdempotencyKey());
+                }
+                break;
+            } catch (DataAccessException e) {
+                log.warn("Could not store result for idempotency key {} (attempt {})", record.getIdempotencyKey(), attempt, e);
+            }
+        }
+        return stored;
+    }
+
+    // Best effort: if this fails too, the lease runs out and a retry takes the record over
+    private void release(IdempotencyRecordEntity record) {
+        try {
+            repository.release(record.getId(), record.getClaimedAt());
+        } catch (DataAccessException e) {
+            // Ignored, see above
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${todoapp.idempotency.purge-interval:PT10M}")
+    public void purgeExpired() {
+        completed.values().removeIf(stored -> isExpired(stored.createdAt()));
+        repository.deleteCreatedBefore(Instant.now().minus(ttl));
+    }
+
+    // Millisecond precision, so a lease read back from any database compares equal to the one written
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private boolean isExpired(Instant createdAt) {
+        return createdAt.plus(ttl).isBefore(Instant.now());
+    }
+
+    private void checkFingerprint(String storedFingerprint, String idempotencyKey, String requestFingerprint) {
+        if (!storedFingerprint.equals(requestFingerprint)) {
+            throw new IdempotencyKeyMismatchException(idempotencyKey);
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(StoredResponse stored, String idempotencyKey, String requestFingerprint,
+                                         Class<T> bodyType) {
+        checkFingerprint(stored.requestFingerprint(), idempotencyKey, requestFingerprint);
+        return ResponseEntity.status(stored.statusCode())
+                .header(REPLAYED_HEADER, "true")
+                .body(deserialize(stored.body(), bodyType));
+    }
+
+    private <T> ResponseEntity<T> toResponse(StoredResponse stored, Class<T> bodyType) {
+        return ResponseEntity.status(stored.statusCode()).body(deserialize(stored.body(), bodyType));
+    }
+
+    private String serialize(Object body) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Body cannot be stored for idempotent replay", e);
+        }
+    }
+
+    private <T> T deserialize(String body, Class<T> bodyType) {
+        if (body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(body, bodyType);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Stored idempotent response cannot be read", e);
+        }
+    }
+}
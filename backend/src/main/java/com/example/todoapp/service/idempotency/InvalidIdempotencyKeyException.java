@@ -0,0 +1,11 @@
+package com.example.todoapp.service.idempotency;
+
+/**
+ * Thrown when the Idempotency-Key header is blank or too long to store.
+ */
+public class InvalidIdempotencyKeyException extends RuntimeException {
+
+    public InvalidIdempotencyKeyException(String message) {
+        super(message);
+    }
+}
@@ -1,17 +1,24 @@
 package com.example.todoapp.service.oauth2;
 
-import com.example.todoapp.model.entity.UserEntity;
 import com.example.todoapp.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
 import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class CustomOAuth2UserService extends DefaultOAuth2UserService {
@@ -19,8 +26,10 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
     @Autowired
     private UserRepository userRepository;
 
+    // Upserts currently running, keyed by provider and externalId; completes with the profile hash written
+    private final Map<String, CompletableFuture<String>> inFlightUpserts = new ConcurrentHashMap<>();
+
     @Override
-    @Transactional
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
         OAuth2User oauth2User = super.loadUser(userRequest);
         Map<String, Object> attributes = oauth2User.getAttributes();
@@ -30,23 +39,84 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
         String name = getName(attributes, provider);
         String email = getEmail(attributes, provider);
 
-        Optional<UserEntity> userOptional = userRepository.findByExternalIdAndProvider(externalId, provider);
-        UserEntity user;
-        if (userOptional.isPresent()) {
-            user = userOptional.get();
-            // Update user details if changed
-            user.setName(name);
-            if (email != null) { // Only update email if provider gives one
-                 user.setEmail(email);
-            }
-        } else {
-            user = new UserEntity(externalId, name, email, provider);
+        try {
+            syncUser(provider, externalId, name, email);
+        } catch (DataAccessException e) {
+            // Surface as an authentication failure so Spring Security's failure handling applies
+            throw new OAuth2AuthenticationException(new OAuth2Error("user_sync_failed"),
+                    "Could not store user " + externalId + " from " + provider, e);
         }
-        userRepository.save(user);
 
         return oauth2User; // Spring Security will handle creating the Authentication object
     }
 
+    /**
+     * Stores the user's profile, writing only if it changed since the last login. Concurrent
+     * logins of the same (provider, externalId) share one upsert: the first caller runs it and
+     * the others wait for it. A waiter whose profile differs from what the first caller wrote
+     * runs its own upsert afterwards, so the two never race. Returns the number of rows this
+     * call wrote (0 for a coalesced or unchanged login).
+     */
+    int syncUser(String provider, String externalId, String name, String email) {
+        String profileHash = profileHash(name, email);
+        String key = provider + ":" + externalId;
+
+        while (true) {
+            CompletableFuture<String> upsert = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlightUpserts.putIfAbsent(key, upsert);
+            if (running != null) {
+                String writtenHash = awaitUpsert(running);
+                if (profileHash.equals(writtenHash)) {
+                    return 0;
+                }
+                continue; // Our profile differs from the one just written, upsert it in turn
+            }
+            // Unregister before completing, so a woken waiter with another profile cannot find
+            // this already completed future again and spin on it
+            try {
+                int written = upsert(provider, externalId, name, email, profileHash);
+                inFlightUpserts.remove(key, upsert);
+                upsert.complete(profileHash);
+                return written;
+            } catch (RuntimeException e) {
+                inFlightUpserts.remove(key, upsert);
+                upsert.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    // Rethrows the first caller's failure as itself rather than as a CompletionException
+    private String awaitUpsert(CompletableFuture<String> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private int upsert(String provider, String externalId, String name, String email, String profileHash) {
+        try {
+            return userRepository.upsertProfile(externalId, provider, name, email, profileHash);
+        } catch (DataIntegrityViolationException e) {
+            // Another node inserted the same user between our match and insert; now it matches
+            return userRepository.upsertProfile(externalId, provider, name, email, profileHash);
+        }
+    }
+
+    private String profileHash(String name, String email) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String profile = name + "\u0000" + (email != null ? email : "");
+            return HexFormat.of().formatHex(digest.digest(profile.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     private String getExternalId(OAuth2User oauth2User, String provider) {
         // For Google and Microsoft, 'sub' is standard. Facebook uses 'id'.
         if ("facebook".equalsIgnoreCase(provider)) {
@@ -0,0 +1,75 @@
+package com.example.todoapp.service.sharding;
+
+import com.example.todoapp.config.sharding.ConsistentHashRing;
+import com.example.todoapp.config.sharding.ShardRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves todos to the shard the hash ring currently assigns their owner to. Run it after
+ * changing the shard list; reads and writes are already routed by the new ring, so this
+ * only brings the existing rows along.
+ *
+ * Rows are copied first and only then deleted from the old shard. Copies replace any row
+ * with the same id on the target, so a rerun after a crash is safe.
+ *
+ * Only shards still in the configuration are drained; see ShardingConfig for why the
+ * shard list is append only.
+ */
+@Service
+@ConditionalOnProperty(prefix = "todoapp.sharding", name = "enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private final ShardRoutingDataSource routingDataSource;
+
+    @Autowired
+    public ShardRebalancer(ShardRoutingDataSource routingDataSource) {
+        this.routingDataSource = routingDataSource;
+    }
+
+    public int rebalance() {
+        ConsistentHashRing ring = routingDataSource.getRing();
+        Map<Object, DataSource> shards = routingDataSource.getResolvedDataSources();
+        int moved = 0;
+        for (int source = 0; source < ring.getShardCount(); source++) {
+            JdbcTemplate sourceJdbc = new JdbcTemplate(shards.get(source));
+            List<Long> userIds = sourceJdbc.queryForList("SELECT DISTINCT user_id FROM todos", Long.class);
+            for (Long userId : userIds) {
+                int target = ring.shardFor(userId);
+                if (target != source) {
+                    moved += moveUser(userId, sourceJdbc, new JdbcTemplate(shards.get(target)));
+                    log.info("Moved todos of user {} from shard {} to shard {}", userId, source, target);
+                }
+            }
+        }
+        log.info("Shard rebalance finished, {} todos moved", moved);
+        return moved;
+    }
+
+    private int moveUser(Long userId, JdbcTemplate sourceJdbc, JdbcTemplate targetJdbc) {
+        List<Object[]> rows = sourceJdbc.query(
+                "SELECT id, title, description, completed, user_id FROM todos WHERE user_id = ?",
+                (rs, rowNum) -> new Object[] {
+                        rs.getLong("id"), rs.getString("title"), rs.getString("description"),
+                        rs.getBoolean("completed"), rs.getLong("user_id")
+                },
+                userId);
+        List<Object[]> ids = rows.stream().map(row -> new Object[] {row[0]}).toList();
+        targetJdbc.batchUpdate("DELETE FROM todos WHERE id = ?", ids);
+        targetJdbc.batchUpdate(
+                "INSERT INTO todos (id, title, description, completed, user_id) VALUES (?, ?, ?, ?, ?)",
+                rows);
+        sourceJdbc.batchUpdate("DELETE FROM todos WHERE id = ?", ids);
+        return rows.size();
+    }
+}
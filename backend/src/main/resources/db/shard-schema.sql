@@ -0,0 +1,11 @@
+-- Schema of a todo shard. Mirrors TodoEntity, minus the foreign key to users,
+-- which live in the directory shard.
+CREATE TABLE IF NOT EXISTS todos (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    description CLOB,
+    completed BOOLEAN NOT NULL,
+    user_id BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_todos_user_id ON todos (user_id);
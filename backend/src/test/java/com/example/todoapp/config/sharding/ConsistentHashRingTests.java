@@ -0,0 +1,35 @@
+package com.example.todoapp.config.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTests {
+
+	@Test
+	void sameUserAlwaysMapsToSameShard() {
+		ConsistentHashRing ring = new ConsistentHashRing(3, 128);
+		ConsistentHashRing rebuilt = new ConsistentHashRing(3, 128);
+		for (long userId = 1; userId <= 1000; userId++) {
+			assertThat(ring.shardFor(userId)).isEqualTo(rebuilt.shardFor(userId)).isBetween(0, 2);
+		}
+	}
+
+	@Test
+	void addingShardOnlyMovesUsersToTheNewShard() {
+		ConsistentHashRing before = new ConsistentHashRing(3, 128);
+		ConsistentHashRing after = new ConsistentHashRing(4, 128);
+		int moved = 0;
+		for (long userId = 1; userId <= 10_000; userId++) {
+			int oldShard = before.shardFor(userId);
+			int newShard = after.shardFor(userId);
+			if (oldShard != newShard) {
+				assertThat(newShard).isEqualTo(3);
+				moved++;
+			}
+		}
+		// Roughly a quarter of the users should follow the new shard, not everyone
+		assertThat(moved).isBetween(1_500, 3_500);
+	}
+
+}
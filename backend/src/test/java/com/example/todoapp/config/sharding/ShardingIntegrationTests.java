@@ -0,0 +1,166 @@
+package com.example.todoapp.config.sharding;
+
+import com.example.todoapp.model.dto.TodoDto;
+import com.example.todoapp.model.entity.UserEntity;
+import com.example.todoapp.repository.UserRepository;
+import com.example.todoapp.service.TodoService;
+import com.example.todoapp.service.sharding.ShardRebalancer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the 'sharded' profile (one directory and three in-memory H2 shards) and checks where
+ * rows actually end up, by querying each database directly.
+ */
+@SpringBootTest(properties = "spring.profiles.active=sharded")
+class ShardingIntegrationTests {
+
+	private static final int USERS = 40;
+
+	@Autowired
+	private ShardRoutingDataSource routingDataSource;
+
+	@Autowired
+	private ShardingProperties shardingProperties;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private TodoService todoService;
+
+	@AfterEach
+	void signOut() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void usersStayInDirectoryAndTodosGoToTheirOwnersShard() {
+		ConsistentHashRing ring = routingDataSource.getRing();
+		Map<Long, Long> todoIdByUser = createUsersWithTodo("placement");
+
+		assertThat(jdbc(routingDataSource, null).queryForObject(
+				"SELECT COUNT(*) FROM users WHERE external_id LIKE 'placement-%'", Integer.class)).isEqualTo(USERS);
+		assertThat(jdbc(routingDataSource, null).queryForObject("SELECT COUNT(*) FROM todos", Integer.class)).isZero();
+
+		Set<Integer> usedShards = new HashSet<>();
+		todoIdByUser.forEach((userId, todoId) -> {
+			int shard = ring.shardFor(userId);
+			usedShards.add(shard);
+			assertThat(todoIdsOn(routingDataSource, shard, userId)).containsExactly(todoId);
+			assertThat(todoId).isBetween(shard * ShardingConfig.ID_RANGE_PER_SHARD + 1,
+					(shard + 1) * ShardingConfig.ID_RANGE_PER_SHARD);
+			for (int other = 0; other < ring.getShardCount(); other++) {
+				if (other != shard) {
+					assertThat(todoIdsOn(routingDataSource, other, userId)).isEmpty();
+				}
+			}
+		});
+		assertThat(usedShards).hasSize(ring.getShardCount());
+	}
+
+	@Test
+	void crudForAUserRunsOnThatUsersShard() {
+		UserEntity user = userRepository.save(new UserEntity("crud-1", "Crud User", "crud-1@example.com", "google"));
+		signIn(user);
+		int shard = routingDataSource.getRing().shardFor(user.getId());
+		JdbcTemplate shardJdbc = jdbc(routingDataSource, shard);
+
+		TodoDto created = todoService.createTodoForUser(user, new TodoDto(null, "Write tests", "On the right shard", false));
+		assertThat(todoService.getTodosForCurrentUser()).extracting(TodoDto::getId).containsExactly(created.getId());
+
+		todoService.updateTodoForUser(user, created.getId(), new TodoDto(null, "Tests written", "On the right shard", true));
+		assertThat(shardJdbc.queryForObject("SELECT title FROM todos WHERE id = ?", String.class, created.getId()))
+				.isEqualTo("Tests written");
+
+		assertThat(todoService.deleteTodoForUser(user, created.getId())).isTrue();
+		assertThat(todoIdsOn(routingDataSource, shard, user.getId())).isEmpty();
+	}
+
+	@Test
+	void rebalanceMovesTodosToAnAppendedShard() throws Exception {
+		ConsistentHashRing before = routingDataSource.getRing();
+		Map<Long, Long> todoIdByUser = createUsersWithTodo("rebalance");
+
+		ShardingProperties grownProperties = new ShardingProperties();
+		grownProperties.setEnabled(true);
+		grownProperties.setVirtualNodes(shardingProperties.getVirtualNodes());
+		grownProperties.setDirectory(shardingProperties.getDirectory());
+		List<ShardingProperties.Shard> shards = new ArrayList<>(shardingProperties.getShards());
+		ShardingProperties.Shard appended = new ShardingProperties.Shard();
+		appended.setUrl("jdbc:h2:mem:tododb_shard_appended;DB_CLOSE_DELAY=-1");
+		shards.add(appended);
+		grownProperties.setShards(shards);
+
+		ShardingConfig grownConfig = new ShardingConfig();
+		try {
+			ShardRoutingDataSource grown = grownConfig.dataSource(grownProperties);
+			ConsistentHashRing after = grown.getRing();
+			new ShardRebalancer(grown).rebalance();
+
+			int movedUsers = 0;
+			for (Map.Entry<Long, Long> entry : todoIdByUser.entrySet()) {
+				Long userId = entry.getKey();
+				int oldShard = before.shardFor(userId);
+				int newShard = after.shardFor(userId);
+				assertThat(todoIdsOn(grown, newShard, userId)).containsExactly(entry.getValue());
+				if (oldShard != newShard) {
+					assertThat(newShard).isEqualTo(shards.size() - 1);
+					assertThat(todoIdsOn(grown, oldShard, userId)).isEmpty();
+					movedUsers++;
+				}
+			}
+			assertThat(movedUsers).isPositive();
+		} finally {
+			grownConfig.destroy();
+		}
+	}
+
+	private Map<Long, Long> createUsersWithTodo(String prefix) {
+		Map<Long, Long> todoIdByUser = new LinkedHashMap<>();
+		for (int i = 0; i < USERS; i++) {
+			UserEntity user = userRepository.save(
+					new UserEntity(prefix + "-" + i, "User " + i, prefix + "-" + i + "@example.com", "google"));
+			TodoDto created = todoService.createTodoForUser(user, new TodoDto(null, "Todo " + i, "Description", false));
+			todoIdByUser.put(user.getId(), created.getId());
+		}
+		return todoIdByUser;
+	}
+
+	// TodoService resolves the provider from the authorities and the external id from the principal name
+	private void signIn(UserEntity user) {
+		OAuth2User principal = new DefaultOAuth2User(List.of(new SimpleGrantedAuthority("OAUTH2_USER")),
+				Map.of("sub", user.getExternalId()), "sub");
+		SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(principal, null,
+				List.of(new SimpleGrantedAuthority("SCOPE_google"))));
+	}
+
+	private List<Long> todoIdsOn(ShardRoutingDataSource routing, int shard, Long userId) {
+		return jdbc(routing, shard).queryForList("SELECT id FROM todos WHERE user_id = ?", Long.class, userId);
+	}
+
+	// A null shard means the directory database
+	private JdbcTemplate jdbc(ShardRoutingDataSource routing, Integer shard) {
+		return new JdbcTemplate(shard == null
+				? routing.getResolvedDefaultDataSource()
+				: routing.getResolvedDataSources().get(shard));
+	}
+
+}
@@ -0,0 +1,60 @@
+package com.example.todoapp.service.idempotency;
+
+import com.example.todoapp.model.dto.TodoDto;
+import com.example.todoapp.model.entity.IdempotencyRecordEntity;
+import com.example.todoapp.repository.IdempotencyRecordRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the lease-conditional statements against the real database, where timestamp precision
+ * decides whether a lease read back still compares equal.
+ */
+@SpringBootTest
+class IdempotencyServiceIntegrationTests {
+
+	private static final long USER_ID = -42L;
+
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private IdempotencyRecordRepository repository;
+
+	@AfterEach
+	void deleteRecords() {
+		repository.deleteAll(repository.findAll().stream().filter(r -> r.getUserId() == USER_ID).toList());
+	}
+
+	@Test
+	void completedResponseIsStoredUnderTheLease() {
+		idempotencyService.execute(USER_ID, "stored", "fingerprint", TodoDto.class,
+				() -> ResponseEntity.status(HttpStatus.CREATED).body(new TodoDto(5L, "Title", null, false)));
+
+		IdempotencyRecordEntity record = repository.findByUserIdAndIdempotencyKey(USER_ID, "stored").orElseThrow();
+		assertThat(record.getStatusCode()).isEqualTo(201);
+		assertThat(record.getResponseBody()).contains("\"id\":5");
+	}
+
+	@Test
+	void supersededLeaseCannotStoreItsResponse() {
+		Instant oldLease = Instant.now().minus(5, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS);
+		IdempotencyRecordEntity record = repository.save(new IdempotencyRecordEntity(USER_ID, "superseded", "fingerprint", oldLease));
+		Instant newLease = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+		assertThat(repository.takeOverExpiredClaim(record.getId(), newLease.minusSeconds(30), newLease)).isEqualTo(1);
+		assertThat(repository.complete(record.getId(), oldLease, 201, "{}")).isZero();
+		assertThat(repository.release(record.getId(), oldLease)).isZero();
+		assertThat(repository.complete(record.getId(), newLease, 201, "{}")).isEqualTo(1);
+	}
+
+}
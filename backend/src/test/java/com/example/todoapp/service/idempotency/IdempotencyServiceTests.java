@@ -0,0 +1,182 @@
+package com.example.todoapp.service.idempotency;
+
+import com.example.todoapp.model.dto.TodoDto;
+import com.example.todoapp.model.entity.IdempotencyRecordEntity;
+import com.example.todoapp.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyServiceTests {
+
+	private static final String FINGERPRINT = "create-fingerprint";
+
+	private IdempotencyRecordRepository repository;
+	private IdempotencyService idempotencyService;
+	private final AtomicInteger executions = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		repository = mock(IdempotencyRecordRepository.class);
+		when(repository.findByUserIdAndIdempotencyKey(anyLong(), anyString())).thenReturn(Optional.empty());
+		when(repository.save(any(IdempotencyRecordEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(repository.complete(any(), any(), any(), any())).thenReturn(1);
+		idempotencyService = new IdempotencyService(repository, new ObjectMapper(), Duration.ofHours(1), Duration.ofSeconds(30), 100);
+	}
+
+	@Test
+	void retryReplaysStoredResponseWithoutRunningAgain() {
+		ResponseEntity<TodoDto> first = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+		ResponseEntity<TodoDto> retry = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThat(executions).hasValue(1);
+		assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(retry.getBody().getId()).isEqualTo(first.getBody().getId());
+		assertThat(retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+	}
+
+	@Test
+	void keysAreScopedPerUser() {
+		idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+		idempotencyService.execute(2L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThat(executions).hasValue(2);
+	}
+
+	@Test
+	void concurrentDuplicatesWaitForTheInFlightExecution() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<ResponseEntity<TodoDto>>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, () -> {
+					sleep(200);
+					return createTodo();
+				})));
+			}
+			for (Future<ResponseEntity<TodoDto>> result : results) {
+				assertThat(result.get().getBody().getId()).isEqualTo(1L);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(executions).hasValue(1);
+	}
+
+	@Test
+	void pendingKeyFromAnotherNodeIsRejected() {
+		when(repository.findByUserIdAndIdempotencyKey(1L, "key-1"))
+				.thenReturn(Optional.of(new IdempotencyRecordEntity(1L, "key-1", FINGERPRINT, Instant.now())));
+
+		assertThatThrownBy(() -> idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo))
+				.isInstanceOf(IdempotencyKeyInUseException.class);
+		assertThat(executions).hasValue(0);
+	}
+
+	@Test
+	void pendingKeyWithExpiredLeaseIsTakenOver() {
+		IdempotencyRecordEntity abandoned = new IdempotencyRecordEntity(1L, "key-1", FINGERPRINT, Instant.now().minusSeconds(60));
+		abandoned.setId(7L);
+		when(repository.findByUserIdAndIdempotencyKey(1L, "key-1")).thenReturn(Optional.of(abandoned));
+		when(repository.takeOverExpiredClaim(eq(7L), any(Instant.class), any(Instant.class))).thenReturn(1);
+
+		ResponseEntity<TodoDto> response = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(executions).hasValue(1);
+		// Stored under the new lease, not the abandoned one
+		verify(repository).complete(eq(7L), eq(abandoned.getClaimedAt()), eq(201), anyString());
+		assertThat(abandoned.getClaimedAt()).isAfter(Instant.now().minusSeconds(30));
+	}
+
+	@Test
+	void supersededExecutionDoesNotOverwriteTheNewOwner() {
+		when(repository.complete(any(), any(), any(), any())).thenReturn(0);
+
+		ResponseEntity<TodoDto> response = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		verify(repository, never()).save(argThat(record -> record.getStatusCode() != null));
+	}
+
+	@Test
+	void keyReusedForAnotherRequestIsRejected() {
+		idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThatThrownBy(() -> idempotencyService.execute(1L, "key-1", "delete-fingerprint", Void.class,
+				() -> ResponseEntity.noContent().<Void>build()))
+				.isInstanceOf(IdempotencyKeyMismatchException.class);
+		assertThat(executions).hasValue(1);
+	}
+
+	@Test
+	void failedCompletionKeepsTheClaimAndStillAnswers() {
+		when(repository.complete(any(), any(), any(), any()))
+				.thenThrow(new DataAccessResourceFailureException("database went away"));
+
+		ResponseEntity<TodoDto> response = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+		ResponseEntity<TodoDto> retry = idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, this::createTodo);
+
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+		assertThat(retry.getBody().getId()).isEqualTo(response.getBody().getId());
+		assertThat(executions).hasValue(1);
+		verify(repository, times(2)).complete(any(), any(), any(), any());
+		verify(repository, never()).release(any(), any());
+		verify(repository, never()).deleteById(any());
+	}
+
+	@Test
+	void failedActionReleasesTheClaim() {
+		assertThatThrownBy(() -> idempotencyService.execute(1L, "key-1", FINGERPRINT, TodoDto.class, () -> {
+			throw new SecurityException("not yours");
+		})).isInstanceOf(SecurityException.class);
+
+		verify(repository).release(any(), any());
+	}
+
+	@Test
+	void blankKeyIsRejected() {
+		assertThatThrownBy(() -> idempotencyService.execute(1L, " ", FINGERPRINT, TodoDto.class, this::createTodo))
+				.isInstanceOf(InvalidIdempotencyKeyException.class);
+	}
+
+	private ResponseEntity<TodoDto> createTodo() {
+		long id = executions.incrementAndGet();
+		return ResponseEntity.status(HttpStatus.CREATED).body(new TodoDto(id, "Title", "Description", false));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
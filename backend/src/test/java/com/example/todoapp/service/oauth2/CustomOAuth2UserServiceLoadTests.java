@@ -0,0 +1,210 @@
+package com.example.todoapp.service.oauth2;
+
+import com.example.todoapp.model.entity.UserEntity;
+import com.example.todoapp.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Replays login storms against the real upsert. The service under test is a fresh instance
+ * whose repository is a Mockito wrapper around the real one, so both rows written and
+ * database round trips can be counted.
+ */
+@SpringBootTest
+class CustomOAuth2UserServiceLoadTests {
+
+	private static final String PROVIDER = "loadtest";
+	private static final String EXTERNAL_ID_PREFIX = "loadtest-";
+	private static final int LOGINS = 10_000;
+	private static final int USERS = 200;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	private UserRepository countingRepository;
+	private CountDownLatch upsertStarted;
+	private CustomOAuth2UserService customOAuth2UserService;
+
+	@BeforeEach
+	void setUp() {
+		countingRepository = mock(UserRepository.class, delegatesTo(userRepository));
+		customOAuth2UserService = serviceWith(countingRepository);
+	}
+
+	@AfterEach
+	void deleteLoadTestUsers() {
+		userRepository.deleteAll(loadTestUsers());
+	}
+
+	@Test
+	void loginStormWritesEachProfileOnce() throws Exception {
+		int written = replayLogins(user -> "User " + user);
+		assertThat(written).isEqualTo(USERS);
+		assertThat(loadTestUsers()).hasSize(USERS);
+
+		// Same profiles again: nothing to write
+		assertThat(replayLogins(user -> "User " + user)).isZero();
+
+		// A quarter of the users changed their name at the provider
+		int renamed = replayLogins(user -> user % 4 == 0 ? "Renamed " + user : "User " + user);
+		assertThat(renamed).isEqualTo(USERS / 4);
+		assertThat(loadTestUsers()).hasSize(USERS)
+				.filteredOn(u -> u.getName().startsWith("Renamed")).hasSize(USERS / 4);
+	}
+
+	@Test
+	void concurrentLoginsOfOneUserShareOneRoundTrip() throws Exception {
+		customOAuth2UserService = serviceWith(slowRepository());
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					return customOAuth2UserService.syncUser(PROVIDER, EXTERNAL_ID_PREFIX + "same", "Same User", "same@loadtest.example");
+				}));
+			}
+			start.countDown();
+			int written = 0;
+			for (Future<Integer> result : results) {
+				written += result.get();
+			}
+			assertThat(written).isEqualTo(1);
+		} finally {
+			executor.shutdown();
+		}
+		verify(countingRepository, times(1)).upsertProfile(any(), any(), any(), any(), any());
+	}
+
+	@Test
+	void concurrentLoginsWithDifferentProfilesRunOneAfterTheOther() throws Exception {
+		customOAuth2UserService = serviceWith(slowRepository());
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Integer> first = executor.submit(() -> customOAuth2UserService.syncUser(
+					PROVIDER, EXTERNAL_ID_PREFIX + "renamed", "Old Name", "renamed@loadtest.example"));
+			upsertStarted.await(); // The second login can only run its upsert after this one
+			Future<Integer> second = executor.submit(() -> customOAuth2UserService.syncUser(
+					PROVIDER, EXTERNAL_ID_PREFIX + "renamed", "New Name", "renamed@loadtest.example"));
+			assertThat(first.get() + second.get()).isEqualTo(2);
+		} finally {
+			executor.shutdown();
+		}
+		verify(countingRepository, times(2)).upsertProfile(any(), any(), any(), any(), any());
+		assertThat(userRepository.findByExternalIdAndProvider(EXTERNAL_ID_PREFIX + "renamed", PROVIDER))
+				.get().extracting(UserEntity::getName).isEqualTo("New Name");
+	}
+
+	@Test
+	void loadUserStoresTheUserInfoResponse() {
+		RestTemplate restTemplate = new RestTemplate();
+		MockRestServiceServer server = MockRestServiceServer.bindTo(restTemplate).build();
+		server.expect(requestTo("https://userinfo.loadtest.example/me"))
+				.andExpect(method(HttpMethod.GET))
+				.andRespond(withSuccess("""
+						{"sub": "loadtest-userinfo", "name": "Info User", "email": "info@loadtest.example"}
+						""", MediaType.APPLICATION_JSON));
+		customOAuth2UserService.setRestOperations(restTemplate);
+
+		OAuth2User oauth2User = customOAuth2UserService.loadUser(userRequest());
+
+		server.verify();
+		assertThat(oauth2User.getName()).isEqualTo("loadtest-userinfo");
+		assertThat(userRepository.findByExternalIdAndProvider("loadtest-userinfo", "google"))
+				.get().extracting(UserEntity::getName, UserEntity::getEmail)
+				.containsExactly("Info User", "info@loadtest.example");
+		verify(countingRepository, times(1)).upsertProfile(any(), any(), any(), any(), any());
+	}
+
+	private int replayLogins(IntFunction<String> nameOf) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(32);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < LOGINS; i++) {
+				int user = i % USERS;
+				results.add(executor.submit(() -> customOAuth2UserService.syncUser(
+						PROVIDER, EXTERNAL_ID_PREFIX + user, nameOf.apply(user), "user" + user + "@loadtest.example")));
+			}
+			int written = 0;
+			for (Future<Integer> result : results) {
+				written += result.get();
+			}
+			return written;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// Holds every upsert for a while so concurrent logins are guaranteed to overlap it, and
+	// signals upsertStarted once the first one is under way
+	private UserRepository slowRepository() {
+		upsertStarted = new CountDownLatch(1);
+		countingRepository = mock(UserRepository.class, invocation -> {
+			upsertStarted.countDown();
+			Thread.sleep(300);
+			return invocation.getMethod().invoke(userRepository, invocation.getArguments());
+		});
+		return countingRepository;
+	}
+
+	private CustomOAuth2UserService serviceWith(UserRepository repository) {
+		CustomOAuth2UserService service = new CustomOAuth2UserService();
+		ReflectionTestUtils.setField(service, "userRepository", repository);
+		return service;
+	}
+
+	private OAuth2UserRequest userRequest() {
+		ClientRegistration registration = ClientRegistration.withRegistrationId("google")
+				.clientId("loadtest-client")
+				.authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+				.redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+				.authorizationUri("https://auth.loadtest.example/authorize")
+				.tokenUri("https://auth.loadtest.example/token")
+				.userInfoUri("https://userinfo.loadtest.example/me")
+				.userNameAttributeName("sub")
+				.build();
+		OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token",
+				Instant.now(), Instant.now().plusSeconds(60));
+		return new OAuth2UserRequest(registration, accessToken);
+	}
+
+	private List<UserEntity> loadTestUsers() {
+		return userRepository.findAll().stream()
+				.filter(u -> u.getExternalId().startsWith(EXTERNAL_ID_PREFIX))
+				.toList();
+	}
+
+}
@@ -1,5 +1,5 @@
 import React, { createContext, useState, useContext, useEffect, useCallback } from 'react';
-import apiClient from '../services/apiService'; // Using the configured axios instance
+import apiClient, { sendIdempotent } from '../services/apiService'; // Using the configured axios instance
 import { useAuth } from './AuthContext';
 
 const TodoContext = createContext();
@@ -36,7 +36,7 @@ export const TodoProvider = ({ children }) => {
     const addTodo = async (todoData) => {
         setLoading(true);
         try {
-            const response = await apiClient.post('/api/todos', todoData);
+            const response = await sendIdempotent(config => apiClient.post('/api/todos', todoData, config));
             setTodos(prevTodos => [...prevTodos, response.data]);
             setError(null);
         } catch (err) {
@@ -51,7 +51,7 @@ export const TodoProvider = ({ children }) => {
     const updateTodo = async (id, updatedData) => {
         setLoading(true);
         try {
-            const response = await apiClient.put(`/api/todos/${id}`, updatedData);
+            const response = await sendIdempotent(config => apiClient.put(`/api/todos/${id}`, updatedData, config));
             setTodos(prevTodos => prevTodos.map(todo => (todo.id === id ? response.data : todo)));
             setError(null);
         } catch (err) {
@@ -66,7 +66,7 @@ export const TodoProvider = ({ children }) => {
     const deleteTodo = async (id) => {
         setLoading(true);
         try {
-            await apiClient.delete(`/api/todos/${id}`);
+            await sendIdempotent(config => apiClient.delete(`/api/todos/${id}`, config));
             setTodos(prevTodos => prevTodos.filter(todo => todo.id !== id));
             setError(null);
         } catch (err) {
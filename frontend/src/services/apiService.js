@@ -18,6 +18,26 @@ apiClient.interceptors.request.use(config => {
     return Promise.reject(error);
 });
 
+const WRITE_RETRIES = 2;
+
+// Sends a write with one Idempotency-Key for the whole logical operation and retries it with the
+// same key when no response arrived (network error) or the key is still in use on another node.
+// The backend then replays the first result instead of applying the change twice.
+export const sendIdempotent = async (send) => {
+    const config = { headers: { 'Idempotency-Key': crypto.randomUUID() } };
+    for (let attempt = 0; ; attempt++) {
+        try {
+            return await send(config);
+        } catch (error) {
+            const retryable = !error.response || error.response.status === 409;
+            if (!retryable || attempt >= WRITE_RETRIES) {
+                throw error;
+            }
+            await new Promise(resolve => setTimeout(resolve, 500 * 2 ** attempt));
+        }
+    }
+};
+
 export const getCurrentUser = async () => {
     try {
         const response = await apiClient.get('/api/user/me');